@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.ConcurrentModificationException;
@@ -14,9 +15,16 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 		private Node parent;
 		private Node left;
 		private Node right;
+		//Whatever a subclass keeps about the sub-tree rooted here, see summarize()
+		private Object summary;
+		//Occurrences of item, only ever above 1 in multiset mode
+		private long count;
+		//Sum of count over the sub-tree rooted here
+		private long total;
 		
 		public Node(E i, Node left, Node right, Node p) {
 			item = i;
+			count = (i == null ? 0 : 1);
 			parent = p;
 			this.left = left;
 			this.right = right;
@@ -61,14 +69,30 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 	//Use this variable to keep track of how many comparisons are made, since some methods require helper methods
 	private int counter;
 	private MyStringBuilder logString;
+	//If true, adding an existing item increments its count instead of failing
+	private final boolean multiset;
 
 	public AVLDictionary() {
+		this(false);
+	}
+
+	private AVLDictionary(boolean multiset) {
+		this.multiset = multiset;
 		beforeRoot = new Node(null, null, null, null);
 		size = 0;
 		modCount = 0;
 		logString = new MyStringBuilder("");
 	}
 
+	/**
+	*Creates a Dictionary in multiset mode, where duplicates are stored as a count on their node.
+	*add() on an item already present increments its count and delete() decrements it.
+	*@return an empty multiset Dictionary
+	**/
+	public static <E extends Comparable<E>> AVLDictionary<E> multiset() {
+		return new AVLDictionary<E>(true);
+	}
+
 	/**
 	*Checks to see whether the Dictionary is empty
 	*@return true if and only if the Dictionary is Empty
@@ -84,6 +108,11 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 	}
 	public int getSize() { return size; }
 	
+	/**
+	*@return the number of occurrences of all items, which is the same as getSize() unless in multiset mode
+	**/
+	public long getTotalCount() { return beforeRoot.left == null ? 0 : beforeRoot.left.total; }
+	
 	private void setHeight(Node node) {
 		if (node.left == null && node.right == null) {
 			node.height = 0;
@@ -95,6 +124,43 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 			node.height = (node.left.height >= node.right.height? node.left.height : node.right.height) + 1;
 		}
 		counter++;
+		node.total = node.count + total(node.left) + total(node.right);
+		setSummary(node);
+	}
+	
+	private long total(Node node) {
+		return node == null ? 0 : node.total;
+	}
+	
+	/**
+	*Adds delta to the total of node and every node above it, used when a count changes without changing the shape of the tree.
+	**/
+	private void addToTotals(Node node, long delta) {
+		for (Node s = node; s != beforeRoot; s = s.parent) {
+			counter++;
+			s.total += delta;
+		}
+	}
+	
+	/**
+	*Recomputes the summary of node from its own item and its children, assuming the children are up to date.
+	*Called from setHeight so that rotations and rebalancing walks keep it correct.
+	**/
+	private void setSummary(Node node) {
+		if (node.item == null) return;
+		counter++;
+		node.summary = summarize(node.item, node.left == null ? null : node.left.summary, node.right == null ? null : node.right.summary);
+	}
+	
+	/**
+	*Hook for subclasses that keep extra information about every sub-tree, such as IntervalDictionary's greatest endpoint.
+	*@param item the item at the root of the sub-tree
+	*@param left the summary of the left sub-tree, null if there isn't one
+	*@param right the summary of the right sub-tree, null if there isn't one
+	*@return the summary of the whole sub-tree, null by default
+	**/
+	protected Object summarize(E item, Object left, Object right) {
+		return null;
 	}
 	
 	private void debugNode(Node node) {
@@ -139,8 +205,6 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 		counter = 0;
 		Node s = beforeRoot.left;
 		while (s != null && !s.item.equals(item)) {
-			if ((Integer)item == 6)
-				System.out.println(s.item.toString());
 			if (s.item.compareTo(item) > 0)
 				s = s.left;
 			else
@@ -153,6 +217,97 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 		return true;
 	}
 
+	/**
+	*Finds how many times an element occurs in the Dictionary
+	*O(lgn)
+	*@param item the item to be checked.
+	*@return the number of occurrences of item, 0 if it is not in the Dictionary. Never more than 1 unless in multiset mode.
+	**/
+	public long count(E item) {
+		counter = 0;
+		Node s = beforeRoot.left;
+		while (s != null && !s.item.equals(item)) {
+			if (s.item.compareTo(item) > 0)
+				s = s.left;
+			else
+				s = s.right;
+			counter++;
+		}
+		logString.append("Operation count() completed using "+counter+" comparisons\n");
+		counter = 0;
+		return s == null ? 0 : s.count;
+	}
+
+	/**
+	*Finds the number of occurrences of elements strictly less than the specified element, counting duplicates
+	*O(lgn)
+	*@param item the item to be checked
+	*@return the weighted rank of item, which is also the index its first occurrence would have in sorted order
+	**/
+	public long rank(E item) {
+		counter = 0;
+		Node s = beforeRoot.left;
+		long rank = 0;
+		while (s != null) {
+			counter++;
+			//Everything in the left sub-tree and s itself precede item, so count them and look for more on the right
+			if (s.item.compareTo(item) < 0) {
+				rank += total(s.left) + s.count;
+				s = s.right;
+			} else
+				s = s.left;
+		}
+		logString.append("Operation rank() completed using "+counter+" comparisons\n");
+		counter = 0;
+		return rank;
+	}
+
+	/**
+	*Finds the element at a given index of the Dictionary in sorted order, where an element with count c takes up c indices
+	*O(lgn)
+	*@param index the index to look up, starting at 0
+	*@return the element covering index
+	*@throws NoSuchElementException if index is negative or not less than getTotalCount()
+	**/
+	public E select(long index) throws NoSuchElementException {
+		if (index < 0 || index >= getTotalCount())
+			throw new NoSuchElementException("No element at index "+index);
+		counter = 0;
+		Node s = beforeRoot.left;
+		while (true) {
+			counter++;
+			long left = total(s.left);
+			if (index < left) {
+				s = s.left;
+			} else if (index < left + s.count) {
+				break;
+			} else {
+				index -= left + s.count;
+				s = s.right;
+			}
+		}
+		logString.append("Operation select() completed using "+counter+" comparisons\n");
+		counter = 0;
+		return s.item;
+	}
+
+	/**
+	*Finds the q-quantile of the Dictionary, weighting each element by its count
+	*O(lgn)
+	*@param q the quantile, between 0 and 1 inclusive
+	*@return the element at index floor(q * getTotalCount()), or the greatest element if q is 1
+	*@throws IllegalArgumentException if q is not between 0 and 1
+	*@throws NoSuchElementException if the Dictionary is empty.
+	**/
+	public E quantile(double q) throws NoSuchElementException {
+		if (!(q >= 0 && q <= 1))
+			throw new IllegalArgumentException("Quantile must be between 0 and 1");
+		if (isEmpty()) throw new NoSuchElementException("No quantile of empty dictionary");
+		long total = getTotalCount();
+		long index = (long)(q * total);
+		return select(index < total ? index : total - 1);
+	}
+
 	/**
 	*Checks to see if an element has a predecessor in the dictionary
 	*O(lgn)
@@ -426,6 +581,7 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 	/**
 	*Adds a new element to the Dictionary 
 	*If there is an equal element already in the table, or the item is null it returns false.
+	*In multiset mode an equal element has its count incremented instead, and true is returned.
 	*@param item the item to be added.
 	*@return true if the item is not null, and not already in the dictionary.
 	**/
@@ -466,7 +622,16 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 			}
 			counter++;
 			//If we've found a match, don't insert and return false
-			if (s != null && s.item.equals(item)) return false;
+			if (s != null && s.item.equals(item)) {
+				if (!multiset) return false;
+				//In multiset mode a duplicate just bumps the count, the shape of the tree doesn't change
+				s.count++;
+				addToTotals(s, 1);
+				modCount++;
+				logString.append("Operation add(item) completed using "+counter+" comparisons\n");
+				counter = 0;
+				return true;
+			}
 			//Starting at s and traversing up the tree, rebalance using rotate
 			while (s.parent != null) {
 				counter++;
@@ -505,6 +670,7 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 
 	/**
 	*Deletes the specified element from the Dictionary if it is present.
+	*In multiset mode only one occurrence is removed, the element stays until its count reaches 0.
 	*@param item the element to be removed
 	*@return true if the element was in the Dictionary and has now been removed. False otherwise.
 	**/
@@ -531,6 +697,15 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 		//If s is null at this point, then item is not in the tree, as we've reached an external node
 		if (s == null) return false;
 		counter++;
+		//Only possible in multiset mode, remove one occurrence and leave the node where it is
+		if (s.count > 1) {
+			s.count--;
+			addToTotals(s, -1);
+			modCount++;
+			logString.append("Operation delete(item) completed using "+counter+" comparisons\n");
+			counter = 0;
+			return true;
+		}
 		//Deleting a leaf node is straightforward
 		if (s.left == null && s.right == null) {
 			if (s.parent.left == s)
@@ -598,6 +773,9 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 		if (s.right != null) s.right.parent = s.parent;
 		counter++;
 		node.parent.item = s.item;
+		node.parent.count = s.count;
+		//node.parent now holds a different item, refresh its summary here; the caller's walk up from s fixes everything above
+		setSummary(node.parent);
 		return s;
 	}
 
@@ -620,6 +798,143 @@ public class AVLDictionary<E extends Comparable<E>> implements Dictionary<E> {
 		return new BackingStructure(start);
 	}
 	
+	/**
+	*Decides which items a search visits, using the summaries kept by summarize() to skip whole sub-trees.
+	**/
+	protected interface Search<I> {
+		/**
+		*@return false if no item in a sub-tree with this summary can match, so it can be skipped
+		**/
+		public boolean mayContain(Object summary);
+
+		/**
+		*@return true if neither item nor any greater item can match, which ends the search
+		**/
+		public boolean pastEnd(I item);
+
+		/**
+		*@return true if item should be returned by the search
+		**/
+		public boolean matches(I item);
+	}
+
+	/**
+	*Provides a fail fast iterator over the items accepted by search, in ascending order.
+	*Items are found lazily, and sub-trees rejected by search.mayContain() are never entered.
+	*@param search decides which sub-trees to enter and which items to return
+	*@param name the name of the operation for the log string
+	*@return an iterator over every item for which search.matches() is true, up to the first for which search.pastEnd() is true
+	**/
+	protected Iterator<E> search(Search<E> search, String name) {
+		return new SearchIterator(search, name);
+	}
+
+	/**
+	*A lazy inorder traversal that prunes sub-trees which cannot contain a match.
+	**/
+	private class SearchIterator implements Iterator<E> {
+
+		private Search<E> search;
+		//Nodes whose left sub-tree has been handled, but which have not been visited themselves
+		private ArrayList<Node> stack;
+		private Node next;
+		private E last;
+		private int mCount;
+
+		private SearchIterator(Search<E> search, String name) {
+			mCount = modCount;
+			this.search = search;
+			stack = new ArrayList<Node>();
+			counter = 0;
+			pushLeft(beforeRoot.left);
+			next = advance();
+			logString.append("Operation "+name+" completed using "+counter+" comparisons\n");
+			counter = 0;
+		}
+
+		/**
+		*Pushes the left spine of the sub-tree rooted at node, stopping at the first sub-tree that can't contain a match.
+		**/
+		private void pushLeft(Node node) {
+			while (node != null && search.mayContain(node.summary)) {
+				counter++;
+				stack.add(node);
+				node = node.left;
+			}
+			counter++;
+		}
+
+		/**
+		*Rebuilds the stack to carry on from the first node greater than item, since a delete can change the shape of the tree.
+		**/
+		private void seekAfter(E item) {
+			stack.clear();
+			Node node = beforeRoot.left;
+			while (node != null && search.mayContain(node.summary)) {
+				counter++;
+				//Nodes greater than item still have to be visited, along with the part of their left sub-tree after item
+				if (node.item.compareTo(item) > 0) {
+					stack.add(node);
+					node = node.left;
+				} else
+					node = node.right;
+			}
+		}
+
+		/**
+		*@return the next matching node in order, or null if there are none left
+		**/
+		private Node advance() {
+			while (!stack.isEmpty()) {
+				Node node = stack.remove(stack.size() - 1);
+				counter++;
+				//Every later node comes after this one, so none of them can match either
+				if (search.pastEnd(node.item)) {
+					stack.clear();
+					return null;
+				}
+				pushLeft(node.right);
+				counter++;
+				if (search.matches(node.item))
+					return node;
+			}
+			return null;
+		}
+
+		public boolean hasNext() {
+			checkSync();
+			return next != null;
+		}
+
+		public E next() {
+			checkSync();
+			if (next == null)
+				throw new NoSuchElementException("Iterator has iterated over all matching elements");
+			last = next.item;
+			next = advance();
+			counter = 0;
+			return last;
+		}
+
+		public void remove() {
+			checkSync();
+			if (last == null)
+				throw new IllegalStateException("Either have not called next() or this element has already been deleted");
+			delete(last);
+			//The next node may have been moved or removed by the delete, so find it again from the root
+			seekAfter(last);
+			next = advance();
+			counter = 0;
+			last = null;
+			mCount = modCount;
+		}
+
+		private void checkSync() {
+			if (mCount != modCount)
+				throw new ConcurrentModificationException("This iterator is no longer synchronized with the original data structure");
+		}
+	}
+
 	/**
 	*A private class that acts as a backing structure for the iterator.
 	**/
@@ -0,0 +1,16 @@
+/**
+*An interval with comparable endpoints, for use with an IntervalDictionary.
+*Implementations should order intervals by low() first in their compareTo, so the tree is keyed on the low endpoint.
+**/
+public interface Interval<T extends Comparable<T>> {
+
+	/**
+	*@return the low endpoint of the interval
+	**/
+	public T low();
+
+	/**
+	*@return the high endpoint of the interval, which should not be less than low()
+	**/
+	public T high();
+}
@@ -0,0 +1,60 @@
+import java.util.Iterator;
+
+/**
+*An AVLDictionary of intervals, which can find every interval overlapping a range or containing a point.
+*Each node also keeps the greatest high endpoint in its sub-tree, so sub-trees that end too early are skipped.
+*E's compareTo should order intervals by low() first, so that the tree is keyed on the low endpoint.
+**/
+public class IntervalDictionary<T extends Comparable<T>, E extends Comparable<E> & Interval<T>> extends AVLDictionary<E> {
+
+	public IntervalDictionary() {
+		super();
+	}
+
+	/**
+	*@return the greatest high endpoint of item and the two sub-trees
+	**/
+	@SuppressWarnings("unchecked")
+	protected Object summarize(E item, Object left, Object right) {
+		T max = item.high();
+		if (left != null && ((T)left).compareTo(max) > 0)
+			max = (T)left;
+		if (right != null && ((T)right).compareTo(max) > 0)
+			max = (T)right;
+		return max;
+	}
+
+	/**
+	*Provides a fail fast iterator over every interval containing point, in ascending order.
+	*@param point the point to stab with
+	*@return an iterator over all intervals i with i.low() <= point <= i.high()
+	**/
+	public Iterator<E> stab(T point) {
+		return overlapping(point, point);
+	}
+
+	/**
+	*Provides a fail fast iterator over every interval overlapping [low, high], in ascending order.
+	*Results are found lazily, sub-trees whose max endpoint is below low are never entered and iteration stops at the first interval starting after high.
+	*Takes O(lgn) per result in the worst case, and never visits the whole tree unless everything overlaps.
+	*@param low the low end of the query range
+	*@param high the high end of the query range
+	*@return an iterator over all intervals i with i.low() <= high and i.high() >= low
+	**/
+	public Iterator<E> overlapping(final T low, final T high) {
+		return search(new Search<E>() {
+			@SuppressWarnings("unchecked")
+			public boolean mayContain(Object summary) {
+				return ((T)summary).compareTo(low) >= 0;
+			}
+
+			public boolean pastEnd(E item) {
+				return item.low().compareTo(high) > 0;
+			}
+
+			public boolean matches(E item) {
+				return item.high().compareTo(low) >= 0;
+			}
+		}, "overlapping()");
+	}
+}
@@ -0,0 +1,76 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+*Measures PagedAVLDictionary throughput as the page cache shrinks below the size of the tree.
+*Usage: java PagedAVLBenchmark [items] [operations]
+*Builds a tree of random longs once, then reopens it with smaller and smaller cache budgets and times random lookups and updates against each.
+**/
+public class PagedAVLBenchmark {
+
+	static class LongCodec implements PagedAVLDictionary.Codec<Long> {
+		public int size() { return 8; }
+		public void write(Long item, ByteBuffer buffer) { buffer.putLong(item); }
+		public Long read(ByteBuffer buffer) { return buffer.getLong(); }
+	}
+
+	public static void main(String[] args) throws IOException {
+		int items = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		LongCodec codec = new LongCodec();
+		File file = File.createTempFile("paged-avl", ".db");
+		file.deleteOnExit();
+
+		Random random = new Random(42);
+		long[] keys = new long[items];
+		long start = System.nanoTime();
+		PagedAVLDictionary<Long> dictionary = new PagedAVLDictionary<Long>(file, codec, Long.MAX_VALUE);
+		dictionary.setLogging(false);
+		for (int i = 0; i < items; i++) {
+			keys[i] = random.nextLong();
+			dictionary.add(keys[i]);
+		}
+		dictionary.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int pages = dictionary.getPageCount();
+		System.out.printf("Built %d items in %d pages (%.1f MB) in %.2fs%n", items, pages, pages * (double)PagedAVLDictionary.DEFAULT_PAGE_SIZE / (1 << 20), seconds);
+		System.out.printf("%-12s %-10s %14s %14s %14s %14s%n", "cache/tree", "cache MB", "lookups/s", "reads/lookup", "updates/s", "reads/update");
+
+		for (int divisor = 1; divisor <= 256; divisor *= 4) {
+			long cacheBytes = (long)pages * PagedAVLDictionary.DEFAULT_PAGE_SIZE / divisor;
+			double lookupSeconds, lookupReads, updateSeconds, updateReads;
+			try (PagedAVLDictionary<Long> budgeted = new PagedAVLDictionary<Long>(file, codec, cacheBytes)) {
+				budgeted.setLogging(false);
+				//Warm the cache up first so every budget is measured in a steady state
+				for (int i = 0; i < operations / 4; i++) {
+					budgeted.contains(keys[random.nextInt(items)]);
+				}
+
+				long reads = budgeted.getPageReads();
+				start = System.nanoTime();
+				for (int i = 0; i < operations; i++) {
+					budgeted.contains(keys[random.nextInt(items)]);
+				}
+				lookupSeconds = (System.nanoTime() - start) / 1e9;
+				lookupReads = (budgeted.getPageReads() - reads) / (double)operations;
+
+				//Updates replace a random key with a new one, so the tree stays the same size for the next budget
+				reads = budgeted.getPageReads();
+				start = System.nanoTime();
+				for (int i = 0; i < operations; i++) {
+					int index = random.nextInt(items);
+					budgeted.delete(keys[index]);
+					keys[index] = random.nextLong();
+					budgeted.add(keys[index]);
+				}
+				budgeted.sync();
+				updateSeconds = (System.nanoTime() - start) / 1e9;
+				updateReads = (budgeted.getPageReads() - reads) / (double)operations;
+			}
+			System.out.printf("%-12s %-10.1f %14.0f %14.2f %14.0f %14.2f%n", "1/"+divisor, cacheBytes / (double)(1 << 20),
+				operations / lookupSeconds, lookupReads, operations / updateSeconds, updateReads);
+		}
+	}
+}
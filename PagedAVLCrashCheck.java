@@ -0,0 +1,212 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+*Checks that PagedAVLDictionary reopens in the state of its last completed sync() after a crash.
+*Usage: java PagedAVLCrashCheck [rounds] [seed] [timeout seconds]
+*A crash is simulated by copying the file while the dictionary still has unsynced changes, some of which have already been written by evictions.
+*Prints ok, or describes the first failure and exits with status 1.
+*A corrupt tree can contain a cycle that makes operations loop forever, so running out of time also counts as a failure.
+**/
+public class PagedAVLCrashCheck {
+
+	//Small pages and a tiny cache, so that evictions and table page moves happen constantly
+	private static final int PAGE_SIZE = 256;
+	private static final long CACHE_BYTES = 4 * PAGE_SIZE;
+	//Each header is a page at the start of the file, with its generation as the second long
+	private static final int GENERATION = 8;
+
+	private static final PagedAVLBenchmark.LongCodec CODEC = new PagedAVLBenchmark.LongCodec();
+
+	public static void main(String[] args) throws InterruptedException {
+		final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		final long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+		long timeout = args.length > 2 ? Long.parseLong(args[2]) : 300;
+		final Throwable[] failure = new Throwable[1];
+		Thread worker = new Thread(new Runnable() {
+			public void run() {
+				try {
+					runChecks(rounds, seed);
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			}
+		});
+		worker.setDaemon(true);
+		worker.start();
+		worker.join(timeout * 1000);
+		if (worker.isAlive())
+			failure[0] = new AssertionError("Timed out after "+timeout+"s, the tree is probably corrupt");
+		if (failure[0] != null) {
+			System.out.println("FAILED: "+failure[0]);
+			System.exit(1);
+		}
+	}
+
+	private static void runChecks(int rounds, long seed) throws IOException {
+		Random random = new Random(seed);
+		File file = tempFile();
+		File image = tempFile();
+		file.delete();
+
+		TreeSet<Long> current = new TreeSet<Long>();
+		TreeSet<Long> synced = new TreeSet<Long>();
+		int crashes = 0;
+		for (int round = 0; round < rounds; round++) {
+			try (PagedAVLDictionary<Long> dictionary = open(file)) {
+				check(contents(dictionary).equals(new ArrayList<Long>(current)), "round "+round+": reopening after close() lost changes");
+				for (int i = 0; i < 2000; i++) {
+					long item = random.nextInt(5000);
+					if (random.nextInt(3) > 0) {
+						check(dictionary.add(item) == current.add(item), "add("+item+") disagrees with TreeSet");
+					} else {
+						check(dictionary.delete(item) == current.remove(item), "delete("+item+") disagrees with TreeSet");
+					}
+					if (random.nextInt(500) == 0) {
+						dictionary.sync();
+						synced = new TreeSet<Long>(current);
+					}
+					if (random.nextInt(400) == 0) {
+						crashes++;
+						Files.copy(file.toPath(), image.toPath(), StandardCopyOption.REPLACE_EXISTING);
+						try (PagedAVLDictionary<Long> recovered = open(image)) {
+							check(contents(recovered).equals(new ArrayList<Long>(synced)), "round "+round+": crash image does not match the last sync()");
+						}
+					}
+				}
+				synced = new TreeSet<Long>(current);
+			}
+		}
+
+		checkTornHeader(file, image, random);
+		checkUnfinishedCreate(file, image);
+		checkLock(file);
+		System.out.println("ok: "+rounds+" rounds, "+crashes+" crash images, torn header, unfinished create and lock checked");
+	}
+
+	/**
+	*Syncs two different versions, then tears the newer header in a copy and checks that the copy opens as the older version.
+	**/
+	private static void checkTornHeader(File file, File image, Random random) throws IOException {
+		List<Long> older;
+		try (PagedAVLDictionary<Long> dictionary = open(file)) {
+			for (int i = 0; i < 200; i++) {
+				dictionary.add((long)random.nextInt(5000));
+			}
+			dictionary.sync();
+			older = contents(dictionary);
+			for (int i = 0; i < 200; i++) {
+				dictionary.delete((long)random.nextInt(5000));
+			}
+			dictionary.sync();
+			check(!contents(dictionary).equals(older), "torn header check needs two different versions");
+			//Copied before close(), which would sync a third time
+			Files.copy(file.toPath(), image.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		try (RandomAccessFile raw = new RandomAccessFile(image, "rw")) {
+			raw.seek(GENERATION);
+			long first = raw.readLong();
+			raw.seek(PAGE_SIZE + GENERATION);
+			long second = raw.readLong();
+			//Simulate a header write that only got partway, by zeroing everything after the generation in the newer header
+			long newest = first > second ? 0 : PAGE_SIZE;
+			raw.seek(newest + GENERATION + 8);
+			raw.write(new byte[PAGE_SIZE - GENERATION - 8]);
+		}
+		try (PagedAVLDictionary<Long> recovered = open(image)) {
+			check(contents(recovered).equals(older), "copy with a torn header did not fall back to the previous sync()");
+		}
+	}
+
+	/**
+	*A crash during the first sync() leaves only create()'s marker header, which should open as a new empty dictionary.
+	*Files with no valid header at all, zero-filled or not, must be refused and left as they were.
+	**/
+	private static void checkUnfinishedCreate(File file, File image) throws IOException {
+		checkRefused(image, new byte[3 * PAGE_SIZE], "zero-filled file");
+		byte[] foreign = new byte[3 * PAGE_SIZE];
+		new Random(1).nextBytes(foreign);
+		checkRefused(image, foreign, "file of random bytes");
+
+		file.delete();
+		PagedAVLDictionary<Long> created = open(file);
+		try {
+			//Copied before close(), which would sync a second time and overwrite the marker
+			Files.copy(file.toPath(), image.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			created.close();
+		}
+		try (RandomAccessFile raw = new RandomAccessFile(image, "rw")) {
+			raw.seek(GENERATION);
+			check(raw.readLong() == 0, "new file has no creating marker in slot 0");
+			//Simulate a crash before the first sync() finished its header in slot 1
+			raw.seek(PAGE_SIZE);
+			raw.write(new byte[PAGE_SIZE]);
+		}
+		try (PagedAVLDictionary<Long> recovered = open(image)) {
+			check(recovered.isEmpty(), "file with only the creating marker did not open as an empty dictionary");
+			recovered.add(1L);
+		}
+		try (PagedAVLDictionary<Long> reopened = open(image)) {
+			check(reopened.contains(1L), "dictionary recreated from the creating marker did not persist");
+		}
+	}
+
+	private static void checkRefused(File image, byte[] bytes, String description) throws IOException {
+		Files.write(image.toPath(), bytes);
+		boolean refused = false;
+		try {
+			open(image).close();
+		} catch (IOException expected) {
+			refused = true;
+		}
+		check(refused, description+" opened as a dictionary");
+		check(Arrays.equals(Files.readAllBytes(image.toPath()), bytes), description+" was changed by a failed open");
+	}
+
+	private static void checkLock(File file) throws IOException {
+		PagedAVLDictionary<Long> dictionary = open(file);
+		try {
+			open(file).close();
+			check(false, "a second instance opened a file that was already open");
+		} catch (IOException e) {
+			//Expected, the first instance holds the lock
+		} finally {
+			dictionary.close();
+		}
+	}
+
+	private static PagedAVLDictionary<Long> open(File file) throws IOException {
+		PagedAVLDictionary<Long> dictionary = new PagedAVLDictionary<Long>(file, CODEC, CACHE_BYTES, PAGE_SIZE);
+		dictionary.setLogging(false);
+		return dictionary;
+	}
+
+	private static List<Long> contents(PagedAVLDictionary<Long> dictionary) {
+		List<Long> items = new ArrayList<Long>();
+		Iterator<Long> it = dictionary.iterator();
+		while (it.hasNext()) {
+			items.add(it.next());
+		}
+		return items;
+	}
+
+	private static File tempFile() throws IOException {
+		File file = File.createTempFile("paged-avl-check", ".db");
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,1020 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.ConcurrentModificationException;
+import java.util.zip.CRC32;
+
+/**
+*An AVL tree Dictionary whose nodes live in fixed-size pages of a file rather than on the heap, for dictionaries bigger than memory.
+*Nodes are referred to by id instead of by reference, node id lives in page id / slotsPerPage.
+*At most a fixed budget of pages are kept in memory, the least recently used page is written back and dropped when the budget is exceeded.
+*Pages are copy-on-write: the first time a page is changed after a sync() it is moved to a free place in the file, so the last synced version is never overwritten.
+*sync() then switches to the new version by writing a new header, which means reopening the file after a crash gives the state of the last completed sync().
+*The page table mapping node pages to places in the file is stored in table pages that share the cache, so besides the cache the heap only holds
+*a directory of 8 bytes per table page (one table page covers pageSize / 8 node pages) and a bitmap with a bit per page of the file.
+*The Dictionary methods can't throw IOException, so if reading or writing a page fails they throw an UncheckedIOException wrapping it.
+*A failure can happen partway through changing the tree, so afterwards every operation and sync() fails, and close() closes the file without syncing.
+*All changes since the last sync() are discarded, and reopening the file gives the last synced version.
+**/
+public class PagedAVLDictionary<E extends Comparable<E>> implements Dictionary<E>, Closeable {
+
+	/**
+	*Converts items to and from a fixed number of bytes, so that every node takes up the same amount of space in a page.
+	**/
+	public interface Codec<E> {
+		/**
+		*@return the number of bytes taken by every encoded item
+		**/
+		public int size();
+
+		/**
+		*Writes item at the current position of buffer, using exactly size() bytes
+		**/
+		public void write(E item, ByteBuffer buffer);
+
+		/**
+		*Reads an item written by write() from the current position of buffer
+		**/
+		public E read(ByteBuffer buffer);
+	}
+
+	private static class Frame {
+		private ByteBuffer data;
+		//Where the page is written back to, which changes when the page is moved on its first write after a sync()
+		private long physical;
+		private boolean dirty;
+	}
+
+	public static final int DEFAULT_PAGE_SIZE = 4096;
+
+	//Stands in for a null reference
+	private static final long NULL = -1;
+	//Node 0 plays the part of beforeRoot in AVLDictionary, the root is its left child
+	private static final long BEFORE_ROOT = 0;
+
+	//Layout of a node, the item takes up the rest of the record
+	private static final int HEIGHT = 0;
+	private static final int PARENT = 4;
+	private static final int LEFT = 12;
+	private static final int RIGHT = 20;
+	private static final int ITEM = 28;
+
+	//Layout of a header, there are two in the first two pages and the valid one with the highest generation is current
+	private static final long MAGIC = 0x41564c5041474544L;
+	private static final int H_MAGIC = 0;
+	private static final int H_GENERATION = 8;
+	private static final int H_PAGE_SIZE = 16;
+	private static final int H_RECORD_SIZE = 20;
+	private static final int H_SIZE = 24;
+	private static final int H_NEXT_NODE = 32;
+	private static final int H_FREE_NODE = 40;
+	private static final int H_LOGICAL_PAGES = 48;
+	private static final int H_DIRECTORY_START = 56;
+	private static final int H_CHECKSUM = 64;
+	private static final int HEADER_PAGES = 2;
+
+	private static final String FAILED = "An earlier I/O error may have left changes half done, close and reopen to get the last synced version";
+
+	private final Codec<E> codec;
+	private final FileChannel channel;
+	private final int pageSize;
+	private final int recordSize;
+	private final int slotsPerPage;
+	//Number of page table entries that fit in one table page
+	private final int entriesPerTablePage;
+	private final int cachePages;
+	//Node pages are keyed by their logical page number, and table pages t by -(t + 1), see tableKey()
+	private final LinkedHashMap<Integer, Frame> cache;
+
+	//The page table maps each logical page to the physical page holding it, and is itself stored in table pages that go through the cache
+	//The directory holds the physical page of each table page, which is the only part of the mapping kept on the heap
+	private long[] directory;
+	private int tablePageCount;
+	private int logicalPages;
+	//Physical pages used by either the synced version or the one being built
+	private BitSet physicalInUse;
+	//Physical pages of the synced version that have been replaced, and can be reused once the next sync() completes
+	private BitSet pendingFree;
+	//Node pages and table pages that have already been moved to a new physical page since the last sync()
+	private BitSet shadowedNodePages;
+	private BitSet shadowedTablePages;
+	private long generation;
+	private int directoryStart;
+	private int directoryPages;
+
+	private int size;
+	private long nextNode;
+	//Deleted nodes are kept in a list linked through their left field so they can be reused
+	private long freeNode;
+	private int modCount;
+	private int counter;
+	private boolean logging;
+	private StringBuilder logString;
+	private long pageReads;
+	private long pageWrites;
+	//Set once any read or write fails, since the tree may then be half changed and must never be synced
+	private boolean failed;
+
+	/**
+	*Opens the dictionary stored in file, or creates a new one if file is empty or doesn't exist.
+	*@param file the file to store the dictionary in
+	*@param codec converts items to and from bytes
+	*@param cacheBytes the most memory to use for cached pages
+	*@throws IOException if the file can't be opened or read, isn't a PagedAVLDictionary file, or is already open in another PagedAVLDictionary
+	**/
+	public PagedAVLDictionary(File file, Codec<E> codec, long cacheBytes) throws IOException {
+		this(file, codec, cacheBytes, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	*Opens the dictionary stored in file, or creates a new one if file is empty or doesn't exist.
+	*@param file the file to store the dictionary in
+	*@param codec converts items to and from bytes
+	*@param cacheBytes the most memory to use for cached pages
+	*@param pageSize the size of a page in bytes, must match the size the file was created with
+	*@throws IOException if the file can't be opened or read, isn't a PagedAVLDictionary file, or is already open in another PagedAVLDictionary
+	*@throws IllegalArgumentException if the header or a node doesn't fit in a page, or the file was created with a different layout
+	**/
+	public PagedAVLDictionary(File file, Codec<E> codec, long cacheBytes, int pageSize) throws IOException {
+		this.codec = codec;
+		this.pageSize = pageSize;
+		recordSize = ITEM + codec.size();
+		if (pageSize < H_CHECKSUM + 8)
+			throw new IllegalArgumentException("Page size "+pageSize+" is too small for the header of "+(H_CHECKSUM + 8)+" bytes");
+		if (recordSize > pageSize)
+			throw new IllegalArgumentException("Page size "+pageSize+" is too small for nodes of "+recordSize+" bytes");
+		slotsPerPage = pageSize / recordSize;
+		entriesPerTablePage = pageSize / 8;
+		cachePages = (int)Math.max(1, Math.min(Integer.MAX_VALUE, cacheBytes / pageSize));
+		cache = new LinkedHashMap<Integer, Frame>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, Frame> eldest) {
+				if (size() <= cachePages) return false;
+				if (eldest.getValue().dirty) writePage(eldest.getValue());
+				return true;
+			}
+		};
+		physicalInUse = new BitSet();
+		pendingFree = new BitSet();
+		shadowedNodePages = new BitSet();
+		shadowedTablePages = new BitSet();
+		logging = true;
+		logString = new StringBuilder();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			//Two instances on one file would each reuse pages the other still needs, so only one may have it open
+			FileLock lock;
+			try {
+				lock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				lock = null;
+			}
+			if (lock == null)
+				throw new IOException("File "+file+" is already open in another PagedAVLDictionary");
+			physicalInUse.set(0, HEADER_PAGES);
+			if (channel.size() == 0 || !open())
+				create();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	*Sets up an empty dictionary and syncs it.
+	*A header with generation 0 is written to slot 0 first, marking the file as being created, so that open() can tell a crash here from a file that isn't a dictionary.
+	*The first sync() writes generation 1 to slot 1, and slot 0 keeps the marker until the second sync().
+	**/
+	private void create() throws IOException {
+		channel.truncate(0);
+		ByteBuffer marker = ByteBuffer.allocate(pageSize);
+		marker.putLong(H_MAGIC, MAGIC);
+		marker.putLong(H_GENERATION, 0);
+		marker.putInt(H_PAGE_SIZE, pageSize);
+		marker.putInt(H_RECORD_SIZE, recordSize);
+		marker.putLong(H_CHECKSUM, checksum(marker));
+		writeFully(marker, 0);
+		channel.force(false);
+		generation = 0;
+		directory = new long[16];
+		tablePageCount = 0;
+		logicalPages = 0;
+		nextNode = 0;
+		freeNode = NULL;
+		size = 0;
+		newNode(null, NULL);
+		sync();
+	}
+
+	/**
+	*Loads the newest valid header and its directory.
+	*The table pages are read once here to find which physical pages are in use, node pages are only read when needed.
+	*@return false if the newest valid header is create()'s marker, so the file was never completely created and nothing has been loaded
+	**/
+	private boolean open() throws IOException {
+		ByteBuffer header = null;
+		for (int slot = 0; slot < HEADER_PAGES; slot++) {
+			ByteBuffer candidate = readHeader(slot);
+			if (validHeader(candidate) && (header == null || candidate.getLong(H_GENERATION) > header.getLong(H_GENERATION)))
+				header = candidate;
+		}
+		if (header == null)
+			throw new IOException("No valid header found, this is not a PagedAVLDictionary file");
+		if (header.getLong(H_GENERATION) == 0) return false;
+		if (header.getInt(H_PAGE_SIZE) != pageSize || header.getInt(H_RECORD_SIZE) != recordSize)
+			throw new IllegalArgumentException("File was created with a different page size or codec");
+		generation = header.getLong(H_GENERATION);
+		size = (int)header.getLong(H_SIZE);
+		nextNode = header.getLong(H_NEXT_NODE);
+		freeNode = header.getLong(H_FREE_NODE);
+		logicalPages = (int)header.getLong(H_LOGICAL_PAGES);
+		tablePageCount = (logicalPages + entriesPerTablePage - 1) / entriesPerTablePage;
+		directoryStart = (int)header.getLong(H_DIRECTORY_START);
+		directoryPages = pagesFor(tablePageCount);
+		ByteBuffer stored = ByteBuffer.allocate(directoryPages * pageSize);
+		readFully(stored, (long)directoryStart * pageSize);
+		directory = new long[Math.max(16, tablePageCount)];
+		physicalInUse.set(directoryStart, directoryStart + directoryPages);
+		ByteBuffer table = ByteBuffer.allocate(pageSize);
+		for (int t = 0; t < tablePageCount; t++) {
+			directory[t] = stored.getLong(t * 8);
+			physicalInUse.set((int)directory[t]);
+			readPhysical(directory[t], table);
+			for (int i = 0; i < entriesPerTablePage && t * entriesPerTablePage + i < logicalPages; i++)
+				physicalInUse.set((int)table.getLong(i * 8));
+		}
+		return true;
+	}
+
+	/**
+	*Reads a header slot, where any part past the end of the file reads as zeros since a crash while creating the file can leave it short
+	**/
+	private ByteBuffer readHeader(int slot) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(pageSize);
+		while (header.hasRemaining()) {
+			if (channel.read(header, (long)slot * pageSize + header.position()) < 0) break;
+		}
+		return header;
+	}
+
+	private boolean validHeader(ByteBuffer header) {
+		return header.getLong(H_MAGIC) == MAGIC && header.getLong(H_CHECKSUM) == checksum(header);
+	}
+
+	private long checksum(ByteBuffer header) {
+		CRC32 crc = new CRC32();
+		ByteBuffer b = header.duplicate();
+		b.position(0);
+		b.limit(H_CHECKSUM);
+		crc.update(b);
+		return crc.getValue();
+	}
+
+	/**
+	*@return the number of pages needed to store entries longs
+	**/
+	private int pagesFor(int entries) {
+		return (int)(((long)entries * 8 + pageSize - 1) / pageSize);
+	}
+
+	/**
+	*Makes every change so far durable. Changed node and table pages are written to their new places, then a new directory, and only once those are on disk is the new header written over the older of the two headers.
+	*The cost is the number of pages changed since the last sync(), plus the directory which takes 8 bytes for every table page.
+	*@throws IOException if writing to the file fails, or an earlier read or write failed, in which case the file still holds the previous synced version
+	**/
+	public void sync() throws IOException {
+		if (failed)
+			throw new IOException(FAILED);
+		try {
+			writeVersion();
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	/**
+	*Does the work of sync(), writing the changed pages, the directory and then the header
+	**/
+	private void writeVersion() throws IOException {
+		try {
+			for (Frame frame : cache.values()) {
+				if (frame.dirty) writePage(frame);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		//The new directory goes into free space too, the old one is still needed until the header is switched
+		int newDirectoryPages = pagesFor(tablePageCount);
+		int newDirectoryStart = findFreeRun(newDirectoryPages);
+		physicalInUse.set(newDirectoryStart, newDirectoryStart + newDirectoryPages);
+		ByteBuffer stored = ByteBuffer.allocate(newDirectoryPages * pageSize);
+		for (int t = 0; t < tablePageCount; t++)
+			stored.putLong(t * 8, directory[t]);
+		writeFully(stored, (long)newDirectoryStart * pageSize);
+		channel.force(false);
+
+		ByteBuffer header = ByteBuffer.allocate(pageSize);
+		header.putLong(H_MAGIC, MAGIC);
+		header.putLong(H_GENERATION, generation + 1);
+		header.putInt(H_PAGE_SIZE, pageSize);
+		header.putInt(H_RECORD_SIZE, recordSize);
+		header.putLong(H_SIZE, size);
+		header.putLong(H_NEXT_NODE, nextNode);
+		header.putLong(H_FREE_NODE, freeNode);
+		header.putLong(H_LOGICAL_PAGES, logicalPages);
+		header.putLong(H_DIRECTORY_START, newDirectoryStart);
+		header.putLong(H_CHECKSUM, checksum(header));
+		writeFully(header, ((generation + 1) % HEADER_PAGES) * pageSize);
+		channel.force(false);
+		generation++;
+
+		//Nothing refers to the previous version any more, so its replaced pages and directory can be reused
+		pendingFree.set(directoryStart, directoryStart + directoryPages);
+		physicalInUse.andNot(pendingFree);
+		physicalInUse.set(0, HEADER_PAGES);
+		pendingFree.clear();
+		shadowedNodePages.clear();
+		shadowedTablePages.clear();
+		directoryStart = newDirectoryStart;
+		directoryPages = newDirectoryPages;
+	}
+
+	/**
+	*Syncs and closes the file, releasing its lock. The dictionary can't be used afterwards, and closing it again does nothing.
+	*If an earlier read or write failed the file is closed without syncing, so it keeps the last synced version.
+	*@throws IOException if syncing or closing fails, the file is closed either way
+	**/
+	public void close() throws IOException {
+		if (!channel.isOpen()) return;
+		try {
+			if (!failed) sync();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private int findFreeRun(int length) {
+		int start = physicalInUse.nextClearBit(HEADER_PAGES);
+		while (true) {
+			int end = physicalInUse.nextSetBit(start);
+			if (end == -1 || end - start >= length) return start;
+			start = physicalInUse.nextClearBit(end);
+		}
+	}
+
+	private int allocatePhysical() {
+		int page = physicalInUse.nextClearBit(HEADER_PAGES);
+		physicalInUse.set(page);
+		return page;
+	}
+
+	private static int tableKey(int tablePage) {
+		return -tablePage - 1;
+	}
+
+	private boolean isShadowed(int key) {
+		return key >= 0 ? shadowedNodePages.get(key) : shadowedTablePages.get(-key - 1);
+	}
+
+	/**
+	*@return the physical page currently holding the page with this cache key
+	**/
+	private long physicalOf(int key) {
+		if (key < 0) return directory[-key - 1];
+		return page(tableKey(key / entriesPerTablePage), false).getLong((key % entriesPerTablePage) * 8);
+	}
+
+	/**
+	*Points the page with this cache key at a new physical page, changing its table page (or the directory, for a table page)
+	*@return the physical page it was at before
+	**/
+	private long setPhysical(int key, long physical) {
+		long old;
+		if (key < 0) {
+			old = directory[-key - 1];
+			directory[-key - 1] = physical;
+		} else {
+			ByteBuffer table = page(tableKey(key / entriesPerTablePage), true);
+			int offset = (key % entriesPerTablePage) * 8;
+			old = table.getLong(offset);
+			table.putLong(offset, physical);
+		}
+		return old;
+	}
+
+	/**
+	*Finds a page in the cache, reading it from the file if needed.
+	*The buffer returned must not be kept, since any other page access may evict it.
+	*@param key the cache key of the page, a logical page number for node pages or tableKey() for table pages
+	*@param write true if the caller will change the page, which moves it to a new physical page the first time after a sync()
+	**/
+	private ByteBuffer page(int key, boolean write) {
+		if (failed)
+			throw new UncheckedIOException(new IOException(FAILED));
+		long movedFrom = NULL;
+		long movedTo = NULL;
+		if (write && !isShadowed(key)) {
+			//Repoint the table before looking at the frame, since changing a table page may evict it
+			movedTo = allocatePhysical();
+			movedFrom = setPhysical(key, movedTo);
+			pendingFree.set((int)movedFrom);
+			if (key >= 0) shadowedNodePages.set(key);
+			else shadowedTablePages.set(-key - 1);
+		}
+		Frame frame = cache.get(key);
+		if (frame == null) {
+			frame = new Frame();
+			frame.data = ByteBuffer.allocate(pageSize);
+			frame.physical = movedFrom != NULL ? movedFrom : physicalOf(key);
+			try {
+				readPhysical(frame.physical, frame.data);
+			} catch (IOException e) {
+				failed = true;
+				throw new UncheckedIOException(e);
+			}
+			pageReads++;
+			cache.put(key, frame);
+		}
+		if (movedTo != NULL) frame.physical = movedTo;
+		if (write) frame.dirty = true;
+		return frame.data;
+	}
+
+	private void writePage(Frame frame) {
+		try {
+			writeFully(frame.data.duplicate(), frame.physical * pageSize);
+		} catch (IOException e) {
+			failed = true;
+			throw new UncheckedIOException(e);
+		}
+		pageWrites++;
+		frame.dirty = false;
+	}
+
+	/**
+	*Adds a new page to the cache that has never been written, so it is already moved and will be written on the next sync()
+	**/
+	private void addFreshPage(int key, long physical) {
+		Frame frame = new Frame();
+		frame.data = ByteBuffer.allocate(pageSize);
+		frame.physical = physical;
+		frame.dirty = true;
+		cache.put(key, frame);
+	}
+
+	/**
+	*Adds a new, empty logical page at the end, and a new table page to hold its entry if the last one is full
+	**/
+	private void growPages() {
+		int logical = logicalPages;
+		if (logical == tablePageCount * entriesPerTablePage) {
+			if (tablePageCount == directory.length) {
+				long[] tmp = new long[directory.length * 2];
+				for (int i = 0; i < tablePageCount; i++) {
+					tmp[i] = directory[i];
+				}
+				directory = tmp;
+			}
+			int tablePage = tablePageCount++;
+			directory[tablePage] = allocatePhysical();
+			shadowedTablePages.set(tablePage);
+			addFreshPage(tableKey(tablePage), directory[tablePage]);
+		}
+		long physical = allocatePhysical();
+		setPhysical(logical, physical);
+		logicalPages++;
+		shadowedNodePages.set(logical);
+		addFreshPage(logical, physical);
+	}
+
+	private void readPhysical(long physical, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		readFully(buffer, physical * pageSize);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of file at "+(position + buffer.position()));
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		buffer.position(0);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	/**
+	*Helpers standing in for field access on a Node in AVLDictionary
+	**/
+	private ByteBuffer node(long id, boolean write) {
+		return page((int)(id / slotsPerPage), write);
+	}
+
+	private int offset(long id) {
+		return (int)(id % slotsPerPage) * recordSize;
+	}
+
+	private long parent(long id) { return node(id, false).getLong(offset(id) + PARENT); }
+	private long left(long id) { return node(id, false).getLong(offset(id) + LEFT); }
+	private long right(long id) { return node(id, false).getLong(offset(id) + RIGHT); }
+	private int height(long id) { return id == NULL ? -1 : node(id, false).getInt(offset(id) + HEIGHT); }
+	private void setParent(long id, long parent) { node(id, true).putLong(offset(id) + PARENT, parent); }
+	private void setLeft(long id, long left) { node(id, true).putLong(offset(id) + LEFT, left); }
+	private void setRight(long id, long right) { node(id, true).putLong(offset(id) + RIGHT, right); }
+
+	private E item(long id) {
+		ByteBuffer b = node(id, false).duplicate();
+		b.position(offset(id) + ITEM);
+		return codec.read(b);
+	}
+
+	private void setItem(long id, E item) {
+		ByteBuffer b = node(id, true).duplicate();
+		b.position(offset(id) + ITEM);
+		codec.write(item, b);
+	}
+
+	/**
+	*Creates a leaf node, reusing a deleted node if there is one
+	*@return the id of the new node
+	**/
+	private long newNode(E item, long parent) {
+		long id;
+		if (freeNode != NULL) {
+			id = freeNode;
+			freeNode = left(id);
+		} else {
+			id = nextNode++;
+			if (id / slotsPerPage >= logicalPages) growPages();
+		}
+		ByteBuffer page = node(id, true);
+		int offset = offset(id);
+		page.putInt(offset + HEIGHT, 0);
+		page.putLong(offset + PARENT, parent);
+		page.putLong(offset + LEFT, NULL);
+		page.putLong(offset + RIGHT, NULL);
+		if (item != null) setItem(id, item);
+		return id;
+	}
+
+	private void freeNode(long id) {
+		setLeft(id, freeNode);
+		freeNode = id;
+	}
+
+	private void log(String operation) {
+		if (logging)
+			logString.append("Operation "+operation+" completed using "+counter+" comparisons\n");
+		counter = 0;
+	}
+
+	/**
+	*Turns the operation log on or off. It is on by default, but it grows with every operation so should be turned off for long runs.
+	**/
+	public void setLogging(boolean logging) {
+		this.logging = logging;
+	}
+
+	/**
+	*@return the number of pages read from the file since the dictionary was opened
+	**/
+	public long getPageReads() { return pageReads; }
+
+	/**
+	*@return the number of pages written to the file since the dictionary was opened
+	**/
+	public long getPageWrites() { return pageWrites; }
+
+	/**
+	*@return the number of pages holding nodes
+	**/
+	public int getPageCount() { return logicalPages; }
+
+	/**
+	*Checks to see whether the Dictionary is empty
+	*@return true if and only if the Dictionary is Empty
+	**/
+	public boolean isEmpty() {
+		counter++;
+		return left(BEFORE_ROOT) == NULL;
+	}
+
+	public int getHeight() {
+		if (isEmpty()) return 0;
+		return height(left(BEFORE_ROOT));
+	}
+
+	public int getSize() { return size; }
+
+	private void setHeight(long id) {
+		int l = height(left(id));
+		int r = height(right(id));
+		node(id, true).putInt(offset(id) + HEIGHT, (l >= r ? l : r) + 1);
+		counter++;
+	}
+
+	/**
+	*@return the node holding an item equal to item, or NULL if there isn't one
+	**/
+	private long find(E item) {
+		long s = left(BEFORE_ROOT);
+		while (s != NULL) {
+			counter++;
+			int c = item(s).compareTo(item);
+			if (c == 0) return s;
+			s = c > 0 ? left(s) : right(s);
+		}
+		return NULL;
+	}
+
+	/**
+	*@return the node with the least item greater than item (or equal to it, if inclusive), or NULL if there isn't one
+	**/
+	private long ceiling(E item, boolean inclusive) {
+		long s = left(BEFORE_ROOT);
+		long found = NULL;
+		while (s != NULL) {
+			counter++;
+			int c = item(s).compareTo(item);
+			if (c > 0 || (inclusive && c == 0)) {
+				found = s;
+				s = left(s);
+			} else
+				s = right(s);
+		}
+		return found;
+	}
+
+	/**
+	*@return the node with the greatest item strictly less than item, or NULL if there isn't one
+	**/
+	private long lower(E item) {
+		long s = left(BEFORE_ROOT);
+		long found = NULL;
+		while (s != NULL) {
+			counter++;
+			if (item(s).compareTo(item) < 0) {
+				found = s;
+				s = right(s);
+			} else
+				s = left(s);
+		}
+		return found;
+	}
+
+	/**
+	*Checks to see if an element is contained in the Dictionary
+	*@param item the item to be checked.
+	*@return true if and only if the Dictionary contains something equal to item.
+	**/
+	public boolean contains(E item) {
+		counter = 0;
+		boolean found = find(item) != NULL;
+		log("contains()");
+		return found;
+	}
+
+	/**
+	*Checks to see if an element has a predecessor in the dictionary
+	*O(lgn)
+	*@return true if and only if there is an element strictly less than item in the Dictionary
+	*@param item the item to be checked
+	**/
+	public boolean hasPredecessor(E item) {
+		if (!isEmpty())
+			return min().compareTo(item) < 0;
+		return false;
+	}
+
+	/**
+	*Checks to see if an element has a successor in the dictionary
+	*O(lgn)
+	*@return true if and only if there is an element strictly greater than item in the Dictionary
+	*@param item the item to be checked
+	**/
+	public boolean hasSuccessor(E item) {
+		if (!isEmpty())
+			return max().compareTo(item) > 0;
+		return false;
+	}
+
+	/**
+	*Find the greatest element less than the specified element
+	*@return the element strictly less than item in the Dictionary
+	*@param item the item to be checked
+	*@throws NoSuchElementException if there is no lesser element.
+	**/
+	public E predecessor(E item) throws NoSuchElementException {
+		counter = 0;
+		long s = lower(item);
+		if (s == NULL)
+			throw new NoSuchElementException("Could not find predecessor of item");
+		log("predecessor()");
+		return item(s);
+	}
+
+	/**
+	*Find the least element greater than the specified element
+	*@return the element strictly greater than item in the Dictionary
+	*@param item the item to be checked
+	*@throws NoSuchElementException if there is no greater element.
+	**/
+	public E successor(E item) throws NoSuchElementException {
+		counter = 0;
+		long s = ceiling(item, false);
+		if (s == NULL)
+			throw new NoSuchElementException("Could not find successor of item");
+		log("successor()");
+		return item(s);
+	}
+
+	/**
+	*Return the least item in the Dictionary
+	*@return the least element in the Dictionary
+	*@throws NoSuchElementException if the Dictionary is empty.
+	**/
+	public E min() throws NoSuchElementException {
+		if (isEmpty()) throw new NoSuchElementException("No minimum element in empty dictionary");
+		counter = 0;
+		long s = left(BEFORE_ROOT);
+		for (long l = left(s); l != NULL; l = left(s)) {
+			s = l;
+			counter++;
+		}
+		log("min()");
+		return item(s);
+	}
+
+	/**
+	*Return the greatest element in the dictionary
+	*@return the greatest element in the Dictionary
+	*@throws NoSuchElementException if the Dictionary is empty.
+	**/
+	public E max() throws NoSuchElementException {
+		if (isEmpty()) throw new NoSuchElementException("No maximum element in empty dictionary");
+		counter = 0;
+		long s = left(BEFORE_ROOT);
+		for (long r = right(s); r != NULL; r = right(s)) {
+			s = r;
+			counter++;
+		}
+		log("max()");
+		return item(s);
+	}
+
+	/**
+	*A helper method to determine the balance of a node.
+	*A negative balance factor indicates the node is right-heavy, positive indicates left-heavy.
+	*@return int the balance factor
+	**/
+	private int getBalanceFactor(long id) {
+		counter++;
+		if (id == NULL) return 0;
+		return height(left(id)) - height(right(id));
+	}
+
+	/**
+	*Performs the necessary rotations around node that rebalance the sub-tree rooted at node.
+	*@return the new root of the sub-tree
+	**/
+	private long rotate(long id) {
+		int balance = getBalanceFactor(id);
+		//Right-heavy, with a double rotation if the right sub-tree is left-heavy
+		if (balance < -1) {
+			if (getBalanceFactor(right(id)) > 0)
+				rightRotate(right(id));
+			return leftRotate(id);
+		}
+		//Left-heavy, with a double rotation if the left sub-tree is right-heavy
+		if (balance > 1) {
+			if (getBalanceFactor(left(id)) < 0)
+				leftRotate(left(id));
+			return rightRotate(id);
+		}
+		return id;
+	}
+
+	private long leftRotate(long id) {
+		long newRoot = right(id);
+		long moved = left(newRoot);
+		long parent = parent(id);
+		setRight(id, moved);
+		if (moved != NULL) setParent(moved, id);
+		setLeft(newRoot, id);
+		setParent(newRoot, parent);
+		counter++;
+		if (left(parent) == id) setLeft(parent, newRoot);
+		else setRight(parent, newRoot);
+		setParent(id, newRoot);
+		setHeight(id);
+		setHeight(newRoot);
+		return newRoot;
+	}
+
+	private long rightRotate(long id) {
+		long newRoot = left(id);
+		long moved = right(newRoot);
+		long parent = parent(id);
+		setLeft(id, moved);
+		if (moved != NULL) setParent(moved, id);
+		setRight(newRoot, id);
+		setParent(newRoot, parent);
+		counter++;
+		if (left(parent) == id) setLeft(parent, newRoot);
+		else setRight(parent, newRoot);
+		setParent(id, newRoot);
+		setHeight(id);
+		setHeight(newRoot);
+		return newRoot;
+	}
+
+	/**
+	*Walks from id up to the root, fixing heights and rebalancing as it goes
+	**/
+	private void rebalanceFrom(long id) {
+		long s = id;
+		while (s != BEFORE_ROOT) {
+			//Read the parent first, since rotating may move s further down
+			long next = parent(s);
+			setHeight(s);
+			rotate(s);
+			s = next;
+		}
+	}
+
+	/**
+	*Adds a new element to the Dictionary
+	*If there is an equal element already in the table, or the item is null it returns false.
+	*@param item the item to be added.
+	*@return true if the item is not null, and not already in the dictionary.
+	**/
+	public boolean add(E item) {
+		counter = 0;
+		if (item == null) return false;
+		long s = left(BEFORE_ROOT);
+		if (s == NULL) {
+			setLeft(BEFORE_ROOT, newNode(item, BEFORE_ROOT));
+		} else {
+			while (true) {
+				counter++;
+				int c = item(s).compareTo(item);
+				if (c == 0) {
+					log("add(item)");
+					return false;
+				}
+				long next = c > 0 ? left(s) : right(s);
+				if (next == NULL) {
+					long added = newNode(item, s);
+					if (c > 0) setLeft(s, added);
+					else setRight(s, added);
+					break;
+				}
+				s = next;
+			}
+			rebalanceFrom(s);
+		}
+		modCount++;
+		size++;
+		log("add(item)");
+		return true;
+	}
+
+	/**
+	*Deletes the specified element from the Dictionary if it is present.
+	*@param item the element to be removed
+	*@return true if the element was in the Dictionary and has now been removed. False otherwise.
+	**/
+	public boolean delete(E item) {
+		counter = 0;
+		if (item == null || isEmpty()) return false;
+		long s = find(item);
+		if (s == NULL) return false;
+		//With 2 children, take the minimum of the right sub-tree's item and remove that node instead
+		if (left(s) != NULL && right(s) != NULL) {
+			long min = right(s);
+			for (long l = left(min); l != NULL; l = left(min)) {
+				min = l;
+				counter++;
+			}
+			setItem(s, item(min));
+			s = min;
+		}
+		//s now has at most one child, which takes its place
+		long child = left(s) != NULL ? left(s) : right(s);
+		long parent = parent(s);
+		if (left(parent) == s) setLeft(parent, child);
+		else setRight(parent, child);
+		if (child != NULL) setParent(child, parent);
+		freeNode(s);
+		rebalanceFrom(parent);
+		modCount++;
+		size--;
+		log("delete(item)");
+		return true;
+	}
+
+	/**
+	*Provides a fail fast iterator for the Dictionary, starting at the least element
+	*Elements are found one at a time, so iterating doesn't need the whole Dictionary in memory.
+	*@return an iterator whose next element is the least element in the dictionary, and which will iterate through all the elements in the Dictionary in ascending order.
+	*/
+	public Iterator<E> iterator() {
+		return new PagedIterator(isEmpty() ? null : min());
+	}
+
+	/**
+	*Provides a fail fast iterator for the Dictionary, starting at the least element greater than or equal to start
+	*@param start the element at which to start iterating at.
+	*@return an iterator whose next element is the least element greater than or equal to start in the dictionary, and which will iterate through all the elements in the Dictionary in ascending order.
+	*/
+	public Iterator<E> iterator(E start) {
+		return new PagedIterator(start);
+	}
+
+	/**
+	*An iterator that looks up each next element with a search from the root, so it holds no nodes and survives remove().
+	**/
+	private class PagedIterator implements Iterator<E> {
+
+		private E next;
+		private E last;
+		private int mCount;
+
+		private PagedIterator(E start) {
+			mCount = modCount;
+			counter = 0;
+			if (start != null) {
+				long s = ceiling(start, true);
+				next = s == NULL ? null : item(s);
+			}
+			log("iterator()");
+		}
+
+		public boolean hasNext() {
+			checkSync();
+			return next != null;
+		}
+
+		public E next() {
+			checkSync();
+			if (next == null)
+				throw new NoSuchElementException("Iterator has iterated over all elements");
+			last = next;
+			long s = ceiling(last, false);
+			next = s == NULL ? null : item(s);
+			counter = 0;
+			return last;
+		}
+
+		public void remove() {
+			checkSync();
+			if (last == null)
+				throw new IllegalStateException("Either have not called next() or this element has already been deleted");
+			delete(last);
+			last = null;
+			mCount = modCount;
+		}
+
+		private void checkSync() {
+			if (mCount != modCount)
+				throw new ConcurrentModificationException("This iterator is no longer synchronized with the original data structure");
+		}
+	}
+
+	/**
+	*Provides a string describing all operations performed on the table since its construction, or since the last time getLogString was called
+	*@return A sting listing all operations called on the Dictionary, and how many comparisons were required to complete each operation.
+	**/
+	public String getLogString() {
+		String log = logString.toString();
+		logString = new StringBuilder();
+		return log;
+	}
+
+	/**
+	*Provides a String representation of the Dictionary, where the representation is simply a newline-separated list of the elements in order
+	*@return a String representation of the Dictionary
+	**/
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		Iterator<E> it = iterator();
+		while (it.hasNext()) {
+			string.append(it.next().toString()+"\n");
+		}
+		return string.toString();
+	}
+}